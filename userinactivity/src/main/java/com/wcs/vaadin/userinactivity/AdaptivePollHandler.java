@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 kumm.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wcs.vaadin.userinactivity;
+
+import com.vaadin.event.UIEvents;
+import com.vaadin.ui.UI;
+
+import java.io.Serializable;
+
+/**
+ * Poll interval handler for the extended UI according to user activity.
+ *
+ * While there is no user action between polls, the poll interval is doubled until it reaches the maximum.
+ * On user action it snaps back to the minimum.
+ * Polls are never counted as user actions.
+ *
+ * Note, the heartbeat interval is a deployment configuration in Vaadin,
+ * and a UI is closed after missing three heartbeats, so it is not managed here.
+ */
+public class AdaptivePollHandler implements Serializable {
+
+    private int minIntervalMillis;
+    private int maxIntervalMillis;
+    private int intervalMillis;
+    private final UserInactivityExtension clientInactivityExtension;
+    private final UserInactivityExtension.ActionListener inactivityActionListener;
+    private final UIEvents.PollListener pollListener;
+    private boolean actionSinceLastPoll = false;
+    private boolean running = false;
+
+    AdaptivePollHandler(UserInactivityExtension clientInactivityExtension) {
+        this.clientInactivityExtension = clientInactivityExtension;
+        inactivityActionListener = new UserInactivityExtension.ActionListener() {
+
+            @Override
+            public void action() {
+                onUserAction();
+            }
+        };
+        pollListener = new UIEvents.PollListener() {
+
+            @Override
+            public void poll(UIEvents.PollEvent event) {
+                onPoll();
+            }
+        };
+    }
+
+    /**
+     * Starts poll interval handling.
+     * The UI polls with the minimum interval from now.
+     * Sets runnig state to true.
+     *
+     * @param minIntervalMillis poll interval while the user is active
+     * @param maxIntervalMillis poll interval limit while the user is inactive
+     * @throws IllegalArgumentException if minIntervalMillis less than 1, or greater than maxIntervalMillis
+     */
+    public void start(int minIntervalMillis, int maxIntervalMillis) {
+        if (minIntervalMillis < 1 || minIntervalMillis > maxIntervalMillis) {
+            throw new IllegalArgumentException("Invalid poll interval range.");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        if (!running) {
+            clientInactivityExtension.addActionListener(inactivityActionListener);
+            getUI().addPollListener(pollListener);
+        }
+        running = true;
+        onUserAction();
+    }
+
+    /**
+     * Stops poll interval handling, and disables polling on the UI.
+     * Sets runnig state to false.
+     */
+    public void stop() {
+        clientInactivityExtension.removeActionListener(inactivityActionListener);
+        getUI().removePollListener(pollListener);
+        getUI().setPollInterval(-1);
+        intervalMillis = -1;
+        running = false;
+    }
+
+    /**
+     * Returns running state
+     *
+     * @return true if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the current poll interval
+     *
+     * @return poll interval in milliseconds
+     */
+    public int getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    private UI getUI() {
+        return (UI) clientInactivityExtension.getParent();
+    }
+
+    private void setIntervalMillis(int intervalMillis) {
+        if (this.intervalMillis != intervalMillis) {
+            this.intervalMillis = intervalMillis;
+            getUI().setPollInterval(intervalMillis);
+        }
+    }
+
+    private void onUserAction() {
+        //action rpc is delayed, so it arrives in the same request with the next poll
+        actionSinceLastPoll = true;
+        setIntervalMillis(minIntervalMillis);
+    }
+
+    private void onPoll() {
+        if (actionSinceLastPoll) {
+            actionSinceLastPoll = false;
+            return;
+        }
+        int backOff = intervalMillis > maxIntervalMillis / 2 ? maxIntervalMillis : intervalMillis * 2;
+        setIntervalMillis(backOff);
+    }
+
+}
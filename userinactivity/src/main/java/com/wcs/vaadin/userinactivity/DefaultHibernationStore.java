@@ -0,0 +1,80 @@
+package com.wcs.vaadin.userinactivity;
+
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.UI;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Default hibernation store.
+ * Keeps content serialized, and gzip compressed in memory.
+ * Content reaching a UI, a VaadinSession, or a VaadinService - like an anonymous listener
+ * created in a UI subclass - is not stored, because it would drag the whole session with it.
+ */
+public class DefaultHibernationStore implements HibernationStore {
+    private byte[] bytes;
+
+    @Override
+    public void store(Component content) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ContentOutputStream(new GZIPOutputStream(byteStream));
+        try {
+            out.writeObject(content);
+        } finally {
+            out.close();
+        }
+        bytes = byteStream.toByteArray();
+    }
+
+    @Override
+    public Component restore() throws IOException {
+        if (bytes == null) {
+            throw new IOException("Nothing stored.");
+        }
+        ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+        Component content;
+        try {
+            content = (Component) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+        bytes = null;
+        return content;
+    }
+
+    @Override
+    public void discard() {
+        bytes = null;
+    }
+
+    /**
+     * Refuses to serialize anything outside of the content.
+     */
+    private static class ContentOutputStream extends ObjectOutputStream {
+
+        ContentOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof UI || obj instanceof VaadinSession || obj instanceof VaadinService) {
+                throw new NotSerializableException("Content references " + obj.getClass().getName());
+            }
+            return obj;
+        }
+    }
+}
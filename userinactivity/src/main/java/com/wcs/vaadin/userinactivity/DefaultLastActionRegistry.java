@@ -2,11 +2,16 @@ package com.wcs.vaadin.userinactivity;
 
 import com.vaadin.server.VaadinSession;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
 /**
  * Default last action time registry.
- * Store in VaadinSession.
+ * Store in VaadinSession, and in {@link IdleSessionIndex#getDefault()}.
+ * A passivated or replicated session is indexed again when it's deserialized.
  */
-public class DefaultLastActionRegistry implements LastActionRegistry {
+public class DefaultLastActionRegistry implements LastActionRegistry, Serializable {
     private final static String SESSION_KEY_LAST_ACTION_TIME
             = DefaultLastActionRegistry.class.getName() + ":last_client_action_time";
 
@@ -17,11 +22,26 @@ public class DefaultLastActionRegistry implements LastActionRegistry {
     @Override
     public void registerLastActionTime() {
         //we are under uidl request handling, so session is locked.
-        getSession().setAttribute(SESSION_KEY_LAST_ACTION_TIME, System.currentTimeMillis());
+        long now = System.currentTimeMillis();
+        VaadinSession session = getSession();
+        Object value = session.getAttribute(SESSION_KEY_LAST_ACTION_TIME);
+        LastAction lastAction;
+        if (value instanceof LastAction) {
+            lastAction = (LastAction) value;
+        } else {
+            lastAction = new LastAction(session);
+            session.setAttribute(SESSION_KEY_LAST_ACTION_TIME, lastAction);
+        }
+        lastAction.register(now);
     }
 
     private long getLastActionTime() {
-        return (Long) getSession().getAttribute(SESSION_KEY_LAST_ACTION_TIME);
+        Object value = getSession().getAttribute(SESSION_KEY_LAST_ACTION_TIME);
+        if (value instanceof Long) {
+            //stored by an earlier version
+            return (Long) value;
+        }
+        return ((LastAction) value).timeMillis;
     }
 
     @Override
@@ -29,4 +49,35 @@ public class DefaultLastActionRegistry implements LastActionRegistry {
         int elapsedSeconds = (int) Math.round((double) (System.currentTimeMillis() - getLastActionTime()) / 1000);
         return timeoutSeconds - elapsedSeconds;
     }
+
+    /**
+     * Last action time stored in the session.
+     * Keeps the slot of the session in the index, so the index is not locked while the slot is unchanged,
+     * and indexes the session again after deserialization.
+     */
+    private static class LastAction implements Serializable {
+        private final VaadinSession session;
+        private volatile long timeMillis;
+        private transient volatile long indexedSlot = -1;
+
+        LastAction(VaadinSession session) {
+            this.session = session;
+        }
+
+        void register(long actionTimeMillis) {
+            timeMillis = actionTimeMillis;
+            IdleSessionIndex index = IdleSessionIndex.getDefault();
+            long slot = index.getSlot(actionTimeMillis);
+            if (slot != indexedSlot) {
+                index.registerLastActionTime(session, actionTimeMillis);
+                indexedSlot = slot;
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            indexedSlot = -1;
+            register(timeMillis);
+        }
+    }
 }
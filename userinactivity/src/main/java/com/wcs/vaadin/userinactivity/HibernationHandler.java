@@ -0,0 +1,300 @@
+/*
+ * Copyright 2014 kumm.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wcs.vaadin.userinactivity;
+
+import com.vaadin.event.LayoutEvents;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.CssLayout;
+import com.vaadin.ui.UI;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * User inactivity hibernation handler for the extended UI.
+ *
+ * After the configured inactivity the content of the UI is detached, passed to a {@link HibernationStore},
+ * and a lightweight placeholder is shown instead.
+ * On the next user action the content is restored.
+ *
+ * Hard limitation: the restored content is a deserialized copy, not the original component tree.
+ * So nothing outside the content may reference the components of the content
+ * - like a Navigator's current view, a view field of a UI subclass, or a presenter -,
+ * else the application updates a stale copy the user can't see, and the original is kept in memory.
+ * Hibernation is refused when the UI has a Navigator, or a field of the UI references the content.
+ * Other references can not be detected, it's your responsibility to avoid them.
+ *
+ * The content is serialized by the default store, so it must not reference the UI
+ * - for example in an anonymous listener of a UI subclass -, else it's not hibernated.
+ *
+ * It has its own timer, so it can be combined with {@link SessionTimeoutHandler} on the same UI.
+ */
+public class HibernationHandler implements Serializable {
+
+    private int hibernateSeconds;
+    private final UserInactivityExtension clientInactivityExtension;
+    private final UserInactivityExtension.ActionListener inactivityActionListener;
+    private final HibernationStore hibernationStore;
+    private Component placeholder;
+    private Component restoreFailedContent;
+    private Component shownPlaceholder;
+    private boolean running = false;
+    private boolean hibernated = false;
+
+    HibernationHandler(UserInactivityExtension clientInactivityExtension, HibernationStore hibernationStore) {
+        this.clientInactivityExtension = clientInactivityExtension;
+        this.hibernationStore = hibernationStore;
+        inactivityActionListener = new UserInactivityExtension.ActionListener() {
+
+            @Override
+            public void action() {
+                onUserAction();
+            }
+        };
+    }
+
+    /**
+     * Sets the component shown instead of the hibernated content.
+     * It should send a request on click - like a button, or a layout with a click listener -,
+     * because the user action is signalled to the server with the next request.
+     * The default is an empty full size layout with a click listener.
+     *
+     * @param placeholder placeholder component, or null for the default
+     */
+    public void setPlaceholder(Component placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * Sets the component shown when the hibernated content can not be restored.
+     * The default is to reload the page, which gives a fresh UI unless it's preserved on refresh.
+     *
+     * @param restoreFailedContent fallback component, or null for the default
+     */
+    public void setRestoreFailedContent(Component restoreFailedContent) {
+        this.restoreFailedContent = restoreFailedContent;
+    }
+
+    /**
+     * Returns hibernation inactivity
+     *
+     * @return inactivity in seconds before hibernation
+     */
+    public int getHibernateSeconds() {
+        return hibernateSeconds;
+    }
+
+    /**
+     * Starts hibernation handling, and user action tracking.
+     * Sets runnig state to true.
+     *
+     * @param hibernateSeconds inactivity in seconds before hibernation
+     * @throws IllegalArgumentException if hibernateSeconds less than 1
+     * @throws IllegalStateException if the UI has a Navigator
+     */
+    public void start(int hibernateSeconds) {
+        if (hibernateSeconds < 1) {
+            throw new IllegalArgumentException("hibernateSeconds should be positive.");
+        }
+        if (getUI().getNavigator() != null) {
+            throw new IllegalStateException("Can not hibernate a UI with a Navigator.");
+        }
+        this.hibernateSeconds = hibernateSeconds;
+        clientInactivityExtension.addActionListener(inactivityActionListener);
+        running = true;
+        clientInactivityExtension.scheduleHibernation(hibernateSeconds);
+    }
+
+    /**
+     * Stops hibernation handling, and user action tracking.
+     * Hibernated content is restored.
+     * Sets runnig state to false.
+     */
+    public void stop() {
+        clientInactivityExtension.removeActionListener(inactivityActionListener);
+        clientInactivityExtension.scheduleHibernation(0);
+        running = false;
+        wakeUp();
+    }
+
+    /**
+     * Returns running state
+     *
+     * @return true if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns hibernated state
+     *
+     * @return true if the content of the UI is hibernated
+     */
+    public boolean isHibernated() {
+        return hibernated;
+    }
+
+    /**
+     * Hibernates the content of the UI immediately.
+     * Does nothing if already hibernated.
+     * If the store fails, the content stays in place.
+     *
+     * @throws IllegalStateException if the UI has a Navigator, or a field of the UI references the content
+     */
+    public void hibernate() {
+        if (hibernated) {
+            return;
+        }
+        UI ui = getUI();
+        Component content = ui.getContent();
+        if (content == null) {
+            return;
+        }
+        String refusal = getRefusal(ui, content);
+        if (refusal != null) {
+            throw new IllegalStateException(refusal);
+        }
+        shownPlaceholder = getPlaceholder();
+        ui.setContent(shownPlaceholder);
+        try {
+            hibernationStore.store(content);
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Can not hibernate content.", e);
+            ui.setContent(content);
+            shownPlaceholder = null;
+            return;
+        }
+        hibernated = true;
+    }
+
+    /**
+     * Restores the hibernated content of the UI.
+     * Does nothing if not hibernated.
+     * If the application replaced the placeholder meanwhile - for example with a login view on session timeout -,
+     * the hibernated content is discarded, and the current content is kept.
+     * If the content can not be restored, the hibernated state is left anyway,
+     * and the fallback set by {@link #setRestoreFailedContent(Component)} is shown.
+     *
+     * @return false if the content can not be restored
+     */
+    public boolean wakeUp() {
+        if (!hibernated) {
+            return true;
+        }
+        hibernated = false;
+        UI ui = getUI();
+        Component placeholderToReplace = shownPlaceholder;
+        shownPlaceholder = null;
+        if (ui.getContent() != placeholderToReplace) {
+            hibernationStore.discard();
+            return true;
+        }
+        try {
+            ui.setContent(hibernationStore.restore());
+            return true;
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Can not restore hibernated content.", e);
+        }
+        if (restoreFailedContent != null) {
+            ui.setContent(restoreFailedContent);
+        } else {
+            ui.getPage().reload();
+        }
+        return false;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(HibernationHandler.class.getName());
+    }
+
+    void onHibernationTimeout() {
+        if (!running) {
+            return;
+        }
+        UI ui = getUI();
+        Component content = ui.getContent();
+        if (content != null && getRefusal(ui, content) == null) {
+            hibernate();
+        }
+    }
+
+    /**
+     * Returns why the content can not be hibernated, or null.
+     */
+    private static String getRefusal(UI ui, Component content) {
+        if (ui.getNavigator() != null) {
+            return "Can not hibernate a UI with a Navigator.";
+        }
+        for (Class<?> type = ui.getClass(); type != UI.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                Object value;
+                try {
+                    field.setAccessible(true);
+                    value = field.get(ui);
+                } catch (Exception e) {
+                    continue;
+                }
+                if (value instanceof Component && isInside((Component) value, content)) {
+                    return "Can not hibernate content referenced by field " + field.getName() + " of the UI.";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInside(Component component, Component content) {
+        for (Component current = component; current != null; current = current.getParent()) {
+            if (current == content) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Component getPlaceholder() {
+        if (placeholder != null) {
+            return placeholder;
+        }
+        CssLayout layout = new CssLayout();
+        layout.setSizeFull();
+        layout.addLayoutClickListener(new LayoutEvents.LayoutClickListener() {
+
+            @Override
+            public void layoutClick(LayoutEvents.LayoutClickEvent event) {
+                //NO-OP, just carries the user action to the server
+            }
+        });
+        return layout;
+    }
+
+    private UI getUI() {
+        return (UI) clientInactivityExtension.getParent();
+    }
+
+    private void onUserAction() {
+        wakeUp();
+        clientInactivityExtension.scheduleHibernation(hibernateSeconds);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.wcs.vaadin.userinactivity;
+
+import com.vaadin.ui.Component;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Storage for the content of a hibernated UI.
+ */
+public interface HibernationStore extends Serializable {
+    /**
+     * Stores the detached content of a hibernated UI.
+     * Previously stored content is replaced.
+     *
+     * @param content detached UI content
+     * @throws IOException if content can not be stored
+     */
+    void store(Component content) throws IOException;
+
+    /**
+     * Restores, and forgets the stored content.
+     * On failure the stored content is kept.
+     *
+     * @return the stored content
+     * @throws IOException if content can not be restored
+     */
+    Component restore() throws IOException;
+
+    /**
+     * Forgets the stored content without restoring it.
+     * Does not fail if nothing stored.
+     */
+    void discard();
+
+}
@@ -0,0 +1,228 @@
+package com.wcs.vaadin.userinactivity;
+
+import com.vaadin.server.SessionDestroyEvent;
+import com.vaadin.server.SessionDestroyListener;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Index of sessions by last user action time.
+ *
+ * Sessions are kept in time slots by their last action time.
+ * Updated on each last action registration, and sessions are dropped when destroyed.
+ * Sessions are weakly referenced, so a session instance which is passivated, or replaced
+ * without a destroy event, is dropped once garbage collected.
+ * {@link DefaultLastActionRegistry} indexes the new instance again when the session is deserialized.
+ * Queries cost is proportional to the number of time slots, not to the number of sessions,
+ * and sessions are not locked.
+ * Results are accurate to the slot length.
+ */
+public class IdleSessionIndex implements SessionDestroyListener {
+    private static final IdleSessionIndex DEFAULT = new IdleSessionIndex(60);
+
+    private final long slotMillis;
+    private final TreeMap<Long, Set<SessionReference>> sessionsBySlot = new TreeMap<Long, Set<SessionReference>>();
+    private final Map<VaadinSession, SessionReference> referenceBySession
+            = new WeakHashMap<VaadinSession, SessionReference>();
+    private final ReferenceQueue<VaadinSession> collectedSessions = new ReferenceQueue<VaadinSession>();
+    private final Set<VaadinService> services = Collections.newSetFromMap(new WeakHashMap<VaadinService, Boolean>());
+
+    /**
+     * Creates an index.
+     *
+     * @param slotSeconds length of a time slot in seconds
+     */
+    public IdleSessionIndex(int slotSeconds) {
+        if (slotSeconds < 1) {
+            throw new IllegalArgumentException("slotSeconds should be positive.");
+        }
+        this.slotMillis = slotSeconds * 1000L;
+    }
+
+    /**
+     * Returns the index updated by {@link DefaultLastActionRegistry}.
+     * Its time slots are one minute long.
+     *
+     * @return default index
+     */
+    public static IdleSessionIndex getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Stores last user action time of a session.
+     * The session is dropped from the index when its service destroys it.
+     *
+     * @param session the session
+     * @param actionTimeMillis last user action time
+     */
+    public synchronized void registerLastActionTime(VaadinSession session, long actionTimeMillis) {
+        expungeCollectedSessions();
+        long slot = getSlot(actionTimeMillis);
+        SessionReference reference = referenceBySession.get(session);
+        if (reference == null) {
+            reference = new SessionReference(session, collectedSessions);
+            referenceBySession.put(session, reference);
+        } else if (reference.slot == slot) {
+            return;
+        } else {
+            removeFromSlot(reference);
+        }
+        reference.slot = slot;
+        Set<SessionReference> references = sessionsBySlot.get(slot);
+        if (references == null) {
+            references = new HashSet<SessionReference>();
+            sessionsBySlot.put(slot, references);
+        }
+        references.add(reference);
+        VaadinService service = session.getService();
+        if (service != null && services.add(service)) {
+            service.addSessionDestroyListener(this);
+        }
+    }
+
+    /**
+     * Returns the time slot of the given time.
+     * Callers may skip {@link #registerLastActionTime} - and its lock - while the slot of a session is unchanged.
+     *
+     * @param timeMillis time
+     * @return time slot
+     */
+    long getSlot(long timeMillis) {
+        return timeMillis / slotMillis;
+    }
+
+    /**
+     * Drops a session from the index.
+     *
+     * @param session the session
+     */
+    public synchronized void remove(VaadinSession session) {
+        SessionReference reference = referenceBySession.remove(session);
+        if (reference != null) {
+            removeFromSlot(reference);
+        }
+    }
+
+    private void removeFromSlot(SessionReference reference) {
+        Set<SessionReference> references = sessionsBySlot.get(reference.slot);
+        if (references == null) {
+            return;
+        }
+        references.remove(reference);
+        if (references.isEmpty()) {
+            sessionsBySlot.remove(reference.slot);
+        }
+    }
+
+    private void expungeCollectedSessions() {
+        Reference<? extends VaadinSession> reference;
+        while ((reference = collectedSessions.poll()) != null) {
+            removeFromSlot((SessionReference) reference);
+        }
+    }
+
+    @Override
+    public void sessionDestroy(SessionDestroyEvent event) {
+        remove(event.getSession());
+    }
+
+    /**
+     * Returns the number of sessions indexed.
+     *
+     * @return number of sessions
+     */
+    public synchronized int getSessionCount() {
+        expungeCollectedSessions();
+        int count = 0;
+        for (Set<SessionReference> references : sessionsBySlot.values()) {
+            count += references.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of sessions without user action for at least the given time.
+     *
+     * @param idleSeconds idle time in seconds
+     * @return number of sessions
+     */
+    public synchronized int countSessionsIdleLongerThan(int idleSeconds) {
+        int count = 0;
+        for (Set<SessionReference> references : getSlotsIdleLongerThan(idleSeconds).values()) {
+            count += references.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sessions without user action for at least the given time.
+     *
+     * @param idleSeconds idle time in seconds
+     * @return sessions, longest idle first
+     */
+    public synchronized List<VaadinSession> getSessionsIdleLongerThan(int idleSeconds) {
+        List<VaadinSession> result = new ArrayList<VaadinSession>();
+        for (Set<SessionReference> references : getSlotsIdleLongerThan(idleSeconds).values()) {
+            for (SessionReference reference : references) {
+                VaadinSession session = reference.get();
+                if (session != null) {
+                    result.add(session);
+                }
+            }
+        }
+        return result;
+    }
+
+    private SortedMap<Long, Set<SessionReference>> getSlotsIdleLongerThan(int idleSeconds) {
+        expungeCollectedSessions();
+        long cutoffSlot = (System.currentTimeMillis() - idleSeconds * 1000L) / slotMillis;
+        return sessionsBySlot.headMap(cutoffSlot);
+    }
+
+    /**
+     * Returns the idle time distribution of the sessions in logarithmic buckets.
+     * The first bucket holds sessions with user action in the current slot,
+     * the next ones are for idle time of 1, 2, 4, 8... slots.
+     * Empty buckets are omitted.
+     *
+     * @return number of sessions by the lower bound of the bucket in seconds
+     */
+    public synchronized SortedMap<Integer, Integer> getIdleHistogram() {
+        expungeCollectedSessions();
+        long currentSlot = System.currentTimeMillis() / slotMillis;
+        int slotSeconds = (int) (slotMillis / 1000);
+        SortedMap<Integer, Integer> histogram = new TreeMap<Integer, Integer>();
+        for (Map.Entry<Long, Set<SessionReference>> entry : sessionsBySlot.entrySet()) {
+            long idleSlots = Math.max(0, currentSlot - entry.getKey());
+            int lowerBoundSeconds = idleSlots == 0 ? 0 : (int) Long.highestOneBit(idleSlots) * slotSeconds;
+            Integer count = histogram.get(lowerBoundSeconds);
+            histogram.put(lowerBoundSeconds, (count == null ? 0 : count) + entry.getValue().size());
+        }
+        return histogram;
+    }
+
+    /**
+     * Weak reference to an indexed session, with its time slot.
+     */
+    private static class SessionReference extends WeakReference<VaadinSession> {
+        private long slot;
+
+        SessionReference(VaadinSession session, ReferenceQueue<VaadinSession> queue) {
+            super(session, queue);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 kumm.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wcs.vaadin.userinactivity;
+
+import com.vaadin.server.VaadinSession;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * User inactivity timeout coordinator of a VaadinSession.
+ *
+ * Shared by the {@link SessionTimeoutHandler} of every UI in the session.
+ * It owns the session timeout, the last action registry, and the session-level timeout listeners,
+ * and computes the timeout deadline once for all UIs.
+ * The deadline is cached only with a {@link DefaultLastActionRegistry},
+ * custom registries are asked on every check, because they may shorten the remaining time.
+ */
+public class SessionTimeoutCoordinator implements Serializable {
+
+    private int sessionTimeoutSeconds;
+    private final LastActionRegistry lastActionRegistry;
+    private final Set<SessionTimeoutHandler.SessionTimeoutListener> timeoutListeners
+            = new HashSet<SessionTimeoutHandler.SessionTimeoutListener>();
+    private long deadlineMillis = 0;
+    private boolean timeoutFired = false;
+
+    private SessionTimeoutCoordinator(LastActionRegistry lastActionRegistry) {
+        this.lastActionRegistry = lastActionRegistry;
+    }
+
+    /**
+     * Returns the coordinator of the given session.
+     *
+     * @param session the session
+     * @return coordinator or null, if no SessionTimeoutHandler initialized in the session
+     */
+    public static SessionTimeoutCoordinator get(VaadinSession session) {
+        return session.getAttribute(SessionTimeoutCoordinator.class);
+    }
+
+    /**
+     * Returns the coordinator of the given session, creates one if necessary.
+     *
+     * @param lastActionRegistry registry of a new coordinator, null for the default one, or the existing one
+     * @throws IllegalStateException if the registry differs by class from the one of the existing coordinator
+     */
+    static SessionTimeoutCoordinator getOrCreate(VaadinSession session, LastActionRegistry lastActionRegistry) {
+        SessionTimeoutCoordinator coordinator = get(session);
+        if (coordinator == null) {
+            if (lastActionRegistry == null) {
+                lastActionRegistry = new DefaultLastActionRegistry();
+            }
+            coordinator = new SessionTimeoutCoordinator(lastActionRegistry);
+            session.setAttribute(SessionTimeoutCoordinator.class, coordinator);
+        } else if (lastActionRegistry != null
+                && lastActionRegistry.getClass() != coordinator.lastActionRegistry.getClass()) {
+            throw new IllegalStateException("Session already uses an other LastActionRegistry: "
+                    + coordinator.lastActionRegistry.getClass().getName());
+        }
+        return coordinator;
+    }
+
+    /**
+     * Adds a session-level inactivity timeout listener.
+     * Called once per timeout, not once per UI.
+     * It stays registered for the lifetime of the session, so it must not reference a UI
+     * - like an anonymous class created in a UI -.
+     * Use {@link SessionTimeoutHandler#addSessionLevelTimeoutListener} for listeners bound to a UI.
+     *
+     * @param listener timeout listener
+     */
+    public void addTimeoutListener(SessionTimeoutHandler.SessionTimeoutListener listener) {
+        timeoutListeners.add(listener);
+    }
+
+    /**
+     * Removes a session-level inactivity timeout listener.
+     *
+     * @param listener timeout listener
+     */
+    public void removeTimeoutListener(SessionTimeoutHandler.SessionTimeoutListener listener) {
+        timeoutListeners.remove(listener);
+    }
+
+    void fireTimeoutEvent() {
+        if (timeoutFired) {
+            return;
+        }
+        timeoutFired = true;
+        for (SessionTimeoutHandler.SessionTimeoutListener timeoutListener : timeoutListeners) {
+            timeoutListener.timeout();
+        }
+    }
+
+    /**
+     * Returns session inactivity timeout
+     *
+     * @return timeout in seconds
+     */
+    public int getSessionTimeoutSeconds() {
+        return sessionTimeoutSeconds;
+    }
+
+    void setSessionTimeoutSeconds(int sessionTimeoutSeconds) {
+        if (this.sessionTimeoutSeconds != sessionTimeoutSeconds) {
+            this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+            deadlineMillis = 0;
+        }
+    }
+
+    /**
+     * Returns remaining seconds until next check for a timeout event.
+     * With the default registry it's asked only when the known deadline elapsed.
+     *
+     * @return remaining time in seconds
+     */
+    public int getRemainingSeconds() {
+        long now = System.currentTimeMillis();
+        if (isDeadlineCacheable() && now < deadlineMillis) {
+            return (int) ((deadlineMillis - now + 999) / 1000);
+        }
+        int remainingSeconds = lastActionRegistry.getRemainingSeconds(sessionTimeoutSeconds);
+        if (remainingSeconds > 0) {
+            deadlineMillis = now + remainingSeconds * 1000L;
+            timeoutFired = false;
+        }
+        return remainingSeconds;
+    }
+
+    private boolean isDeadlineCacheable() {
+        //just the default registry is known to never shorten the remaining time
+        return lastActionRegistry.getClass() == DefaultLastActionRegistry.class;
+    }
+
+    void onUserAction() {
+        lastActionRegistry.registerLastActionTime();
+        deadlineMillis = System.currentTimeMillis() + sessionTimeoutSeconds * 1000L;
+        timeoutFired = false;
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package com.wcs.vaadin.userinactivity;
 
+import com.vaadin.server.ClientConnector;
+
 import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
@@ -30,21 +32,24 @@ import java.util.Set;
  *
  * Note, just UIs with an initialized SessionTimeoutHandler counts in user activity tracking.
  *
+ * The timeout, the last action registry, and the deadline are shared by the UIs of the session
+ * through a {@link SessionTimeoutCoordinator}. This handler is just the attachment of the UI to it.
+ *
  * @author kumm
  */
 public class SessionTimeoutHandler implements Serializable {
 
-    private int sessionTimeoutSeconds;
+    private final SessionTimeoutCoordinator coordinator;
     private final UserInactivityExtension clientInactivityExtension;
     private final Set<SessionTimeoutListener> timeoutListeners = new HashSet<SessionTimeoutListener>();
+    private final Set<SessionTimeoutListener> sessionLevelTimeoutListeners = new HashSet<SessionTimeoutListener>();
     private final UserInactivityExtension.TimeoutListener inactivityTimeoutListener;
     private final UserInactivityExtension.ActionListener inactivityActionListener;
-    private final LastActionRegistry lastActionRegistry;
     private boolean running = false;
 
-    SessionTimeoutHandler(UserInactivityExtension clientInactivityExtension, LastActionRegistry lastActionRegistry) {
+    SessionTimeoutHandler(UserInactivityExtension clientInactivityExtension, SessionTimeoutCoordinator coordinator) {
         this.clientInactivityExtension = clientInactivityExtension;
-        this.lastActionRegistry = lastActionRegistry;
+        this.coordinator = coordinator;
         inactivityTimeoutListener = new UserInactivityExtension.TimeoutListener() {
 
             @Override
@@ -59,10 +64,18 @@ public class SessionTimeoutHandler implements Serializable {
                 onUserAction();
             }
         };
+        clientInactivityExtension.addDetachListener(new ClientConnector.DetachListener() {
+
+            @Override
+            public void detach(ClientConnector.DetachEvent event) {
+                onDetach();
+            }
+        });
     }
 
     /**
-     * Adds a session inactivity timeout listener.
+     * Adds a session inactivity timeout listener to this UI.
+     * For a listener called once per session use {@link #addSessionLevelTimeoutListener}.
      *
      * @param listener timeout listener
      */
@@ -71,7 +84,7 @@ public class SessionTimeoutHandler implements Serializable {
     }
 
     /**
-     * Removes a session inactivity timeout listener.
+     * Removes a session inactivity timeout listener from this UI.
      *
      * @param listener timeout listener
      */
@@ -79,6 +92,28 @@ public class SessionTimeoutHandler implements Serializable {
         timeoutListeners.remove(listener);
     }
 
+    /**
+     * Adds a session-level inactivity timeout listener to the coordinator of the session.
+     * Called once per session timeout, not once per UI.
+     * Removed from the coordinator when the UI is detached, so it may reference this UI.
+     *
+     * @param listener timeout listener
+     */
+    public void addSessionLevelTimeoutListener(SessionTimeoutListener listener) {
+        sessionLevelTimeoutListeners.add(listener);
+        coordinator.addTimeoutListener(listener);
+    }
+
+    /**
+     * Removes a session-level inactivity timeout listener from the coordinator of the session.
+     *
+     * @param listener timeout listener
+     */
+    public void removeSessionLevelTimeoutListener(SessionTimeoutListener listener) {
+        sessionLevelTimeoutListeners.remove(listener);
+        coordinator.removeTimeoutListener(listener);
+    }
+
     private void fireTimeoutEvent() {
         for (SessionTimeoutListener timeoutListener : timeoutListeners) {
             timeoutListener.timeout();
@@ -91,7 +126,16 @@ public class SessionTimeoutHandler implements Serializable {
      * @return timeout in seconds
      */
     public int getSessionTimeoutSeconds() {
-        return sessionTimeoutSeconds;
+        return coordinator.getSessionTimeoutSeconds();
+    }
+
+    /**
+     * Returns the coordinator shared by the UIs of the session
+     *
+     * @return coordinator
+     */
+    public SessionTimeoutCoordinator getCoordinator() {
+        return coordinator;
     }
 
     /**
@@ -113,13 +157,13 @@ public class SessionTimeoutHandler implements Serializable {
 
     /**
      * Starts session timeout handling, and user action tracking.
-     * It's your responsibility to provide the same timeout value for all tracked UI.
+     * The timeout is shared by all tracked UI of the session, the last started value applies.
      * Sets runnig state to true.
      *
      * @param sessionTimeoutSeconds Less than 1 means no timeout handling, just lastActionTime tracking
      */
     public void start(int sessionTimeoutSeconds) {
-        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+        coordinator.setSessionTimeoutSeconds(sessionTimeoutSeconds);
         clientInactivityExtension.addActionListener(inactivityActionListener);
         clientInactivityExtension.addTimeoutListener(inactivityTimeoutListener);
         running = true;
@@ -137,6 +181,17 @@ public class SessionTimeoutHandler implements Serializable {
         running = false;
     }
 
+    private void onDetach() {
+        for (SessionTimeoutListener listener : sessionLevelTimeoutListeners) {
+            coordinator.removeTimeoutListener(listener);
+        }
+        sessionLevelTimeoutListeners.clear();
+        //no rpc to cancel the client side timer, the UI is gone
+        clientInactivityExtension.removeActionListener(inactivityActionListener);
+        clientInactivityExtension.removeTimeoutListener(inactivityTimeoutListener);
+        running = false;
+    }
+
     /**
      * Returns running state
      *
@@ -147,11 +202,12 @@ public class SessionTimeoutHandler implements Serializable {
     }
 
     private void onInactivityTimeout() {
-        if (sessionTimeoutSeconds < 1) {
+        if (getSessionTimeoutSeconds() < 1) {
             return;
         }
         int remainingSeconds = getRemainingSeconds();
         if (remainingSeconds < 1) {
+            coordinator.fireTimeoutEvent();
             fireTimeoutEvent();
         } else {
             clientInactivityExtension.scheduleTimeout(remainingSeconds);
@@ -164,11 +220,12 @@ public class SessionTimeoutHandler implements Serializable {
      * @return remaining time in seconds
      */
     public int getRemainingSeconds() {
-        return lastActionRegistry.getRemainingSeconds(sessionTimeoutSeconds);
+        return coordinator.getRemainingSeconds();
     }
 
     private void onUserAction() {
-        lastActionRegistry.registerLastActionTime();
+        coordinator.onUserAction();
+        int sessionTimeoutSeconds = getSessionTimeoutSeconds();
         if (sessionTimeoutSeconds > 0) {
             clientInactivityExtension.scheduleTimeout(sessionTimeoutSeconds);
         }
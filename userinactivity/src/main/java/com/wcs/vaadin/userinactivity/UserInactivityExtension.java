@@ -19,13 +19,18 @@ import com.vaadin.server.AbstractClientConnector;
 import com.vaadin.server.AbstractExtension;
 import com.vaadin.server.ClientConnector;
 import com.vaadin.server.Extension;
+import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.UI;
 import com.wcs.vaadin.userinactivity.client.UserInactivityClientRpc;
 import com.wcs.vaadin.userinactivity.client.UserInactivityServerRpc;
+import com.wcs.vaadin.userinactivity.client.UserInactivityState;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Extension to track user activity, and inactivity timeout.
@@ -37,6 +42,8 @@ public class UserInactivityExtension extends AbstractExtension {
     private final Collection<TimeoutListener> timeoutListeners = new HashSet<TimeoutListener>();
     private final Collection<ActionListener> actionListeners = new HashSet<ActionListener>();
     private SessionTimeoutHandler sessionTimeoutHandler;
+    private HibernationHandler hibernationHandler;
+    private AdaptivePollHandler adaptivePollHandler;
 
     UserInactivityExtension() {
         registerRpc(new UserInactivityServerRpc() {
@@ -45,6 +52,13 @@ public class UserInactivityExtension extends AbstractExtension {
                 fireTimeoutEvent();
             }
 
+            @Override
+            public void hibernationTimeout() {
+                if (hibernationHandler != null) {
+                    hibernationHandler.onHibernationTimeout();
+                }
+            }
+
             @Override
             public void action(boolean fire) {
                 if (fire) {
@@ -64,6 +78,44 @@ public class UserInactivityExtension extends AbstractExtension {
         return UI.class;
     }
 
+    @Override
+    protected UserInactivityState getState() {
+        return (UserInactivityState) super.getState();
+    }
+
+    @Override
+    protected UserInactivityState getState(boolean markAsDirty) {
+        return (UserInactivityState) super.getState(markAsDirty);
+    }
+
+    /**
+     * Sets the DOM event types counted as user activity on client side.
+     * The default is keydown, mousedown, and touchstart.
+     *
+     * @param eventTypes DOM event types, like "keydown"
+     * @throws IllegalArgumentException if eventTypes or any of its elements is null
+     */
+    public void setActivityEventTypes(String... eventTypes) {
+        if (eventTypes == null) {
+            throw new IllegalArgumentException("eventTypes should not be null.");
+        }
+        for (String eventType : eventTypes) {
+            if (eventType == null) {
+                throw new IllegalArgumentException("eventTypes should not contain null.");
+            }
+        }
+        getState().activityEventTypes = new ArrayList<String>(Arrays.asList(eventTypes));
+    }
+
+    /**
+     * Returns the DOM event types counted as user activity on client side.
+     *
+     * @return DOM event types
+     */
+    public List<String> getActivityEventTypes() {
+        return new ArrayList<String>(getState(false).activityEventTypes);
+    }
+
     /**
      * Adds a user inactivity timeout listener to the extended UI.
      * You should not need this with an initialized sessionTimeoutHandler.
@@ -114,6 +166,17 @@ public class UserInactivityExtension extends AbstractExtension {
         getRpcProxy(UserInactivityClientRpc.class).scheduleTimeout(timeoutSeconds);
     }
 
+    /**
+     * Schedules a hibernation timeout on the extended UI.
+     * It has its own client side timer, independent from {@link #scheduleTimeout(int)}.
+     * On user action it's cancelled.
+     *
+     * @param timeoutSeconds timeout in seconds, less than 1 cancels
+     */
+    void scheduleHibernation(int timeoutSeconds) {
+        getRpcProxy(UserInactivityClientRpc.class).scheduleHibernation(timeoutSeconds);
+    }
+
     /**
      * Cancels the sheduled timeout.
      * Does not fail if it's not scheduled.
@@ -126,24 +189,40 @@ public class UserInactivityExtension extends AbstractExtension {
     
     /**
      * Initializes session-wise inactivity timeout handling on the extended UI.
+     * Uses the registry of the session if an other UI already initialized it,
+     * or a {@link DefaultLastActionRegistry}.
      * 
      * @return SessionTimeoutHandler for the extended UI.
      * @throws IllegalStateException if sessionTimeoutHandler already initlialized for the extended UI.
      */
     public SessionTimeoutHandler initSessionTimeoutHandler() {
-        return initSessionTimeoutHandler(new DefaultLastActionRegistry());
+        return initSessionTimeoutHandlerWith(null);
     }
 
     /**
      * Initializes session-wise inactivity timeout handling on the extended UI.
+     * The registry is shared by the UIs of the session,
+     * so every UI of the session should provide the same kind of registry.
      *
      * @param lastActionRegistry custom registry for last user action time and expiration.
      * @return SessionTimeoutHandler for the extended UI.
-     * @throws IllegalStateException if sessionTimeoutHandler already initlialized for the extended UI.
+     * @throws IllegalStateException if sessionTimeoutHandler already initlialized for the extended UI,
+     * or the session already uses a registry of an other class.
+     * @throws IllegalArgumentException if lastActionRegistry is null
      */
     public SessionTimeoutHandler initSessionTimeoutHandler(LastActionRegistry lastActionRegistry) {
+        if (lastActionRegistry == null) {
+            throw new IllegalArgumentException("lastActionRegistry should not be null.");
+        }
+        return initSessionTimeoutHandlerWith(lastActionRegistry);
+    }
+
+    private SessionTimeoutHandler initSessionTimeoutHandlerWith(LastActionRegistry lastActionRegistry) {
         if (sessionTimeoutHandler == null) {
-            sessionTimeoutHandler = new SessionTimeoutHandler(this, lastActionRegistry);
+            //we are under uidl request handling, so session is locked.
+            SessionTimeoutCoordinator coordinator
+                    = SessionTimeoutCoordinator.getOrCreate(VaadinSession.getCurrent(), lastActionRegistry);
+            sessionTimeoutHandler = new SessionTimeoutHandler(this, coordinator);
             return sessionTimeoutHandler;
         } else {
             throw new IllegalStateException("SessionHandler already  inititalized.");
@@ -159,6 +238,65 @@ public class UserInactivityExtension extends AbstractExtension {
         return sessionTimeoutHandler;
     }
 
+    /**
+     * Initializes inactivity hibernation handling on the extended UI.
+     *
+     * @return HibernationHandler for the extended UI.
+     * @throws IllegalStateException if hibernationHandler already initlialized for the extended UI.
+     */
+    public HibernationHandler initHibernationHandler() {
+        return initHibernationHandler(new DefaultHibernationStore());
+    }
+
+    /**
+     * Initializes inactivity hibernation handling on the extended UI.
+     *
+     * @param hibernationStore custom store for the hibernated content.
+     * @return HibernationHandler for the extended UI.
+     * @throws IllegalStateException if hibernationHandler already initlialized for the extended UI.
+     */
+    public HibernationHandler initHibernationHandler(HibernationStore hibernationStore) {
+        if (hibernationHandler == null) {
+            hibernationHandler = new HibernationHandler(this, hibernationStore);
+            return hibernationHandler;
+        } else {
+            throw new IllegalStateException("HibernationHandler already  inititalized.");
+        }
+    }
+
+    /**
+     * Returns the hibernationHandler for the extended UI.
+     *
+     * @return hibernationHandler or null
+     */
+    public HibernationHandler getHibernationHandler() {
+        return hibernationHandler;
+    }
+
+    /**
+     * Initializes activity dependent poll interval handling on the extended UI.
+     *
+     * @return AdaptivePollHandler for the extended UI.
+     * @throws IllegalStateException if adaptivePollHandler already initlialized for the extended UI.
+     */
+    public AdaptivePollHandler initAdaptivePollHandler() {
+        if (adaptivePollHandler == null) {
+            adaptivePollHandler = new AdaptivePollHandler(this);
+            return adaptivePollHandler;
+        } else {
+            throw new IllegalStateException("AdaptivePollHandler already  inititalized.");
+        }
+    }
+
+    /**
+     * Returns the adaptivePollHandler for the extended UI.
+     *
+     * @return adaptivePollHandler or null
+     */
+    public AdaptivePollHandler getAdaptivePollHandler() {
+        return adaptivePollHandler;
+    }
+
     private void fireTimeoutEvent() {
         for (TimeoutListener listener : timeoutListeners) {
             listener.timeout();
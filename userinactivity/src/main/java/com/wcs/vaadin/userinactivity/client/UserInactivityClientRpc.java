@@ -24,4 +24,6 @@ import com.vaadin.shared.communication.ClientRpc;
 public interface UserInactivityClientRpc extends ClientRpc {
 
     void scheduleTimeout(int timeoutSeconds);
+
+    void scheduleHibernation(int timeoutSeconds);
 }
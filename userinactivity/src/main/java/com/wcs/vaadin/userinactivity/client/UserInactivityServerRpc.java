@@ -21,6 +21,8 @@ import com.vaadin.shared.communication.ServerRpc;
 public interface UserInactivityServerRpc extends ServerRpc {
 
     public void timeout();
+
+    public void hibernationTimeout();
     
     @Delayed(lastOnly = true)
     public void action(boolean fire);
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 kumm.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wcs.vaadin.userinactivity.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.user.client.Event;
+import com.google.gwt.user.client.Timer;
+import com.vaadin.client.ApplicationConnection;
+import com.vaadin.client.ApplicationConnection.ApplicationStoppedEvent;
+import com.vaadin.client.ApplicationConnection.ApplicationStoppedHandler;
+import com.vaadin.client.ApplicationConnection.CommunicationHandler;
+import com.vaadin.client.ApplicationConnection.RequestStartingEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client side user activity tracking, and inactivity timers of {@link UserInactivityConnector}.
+ */
+class UserInactivityTracker implements CommunicationHandler, ApplicationStoppedHandler {
+
+    private final UserInactivityServerRpc rpc;
+    private boolean userInitiatedRequest = false;
+    private final List<HandlerRegistration> handlerRegistrations = new ArrayList<HandlerRegistration>();
+    private final Map<String, JavaScriptObject> activityListeners = new HashMap<String, JavaScriptObject>();
+    private final List<String> previewedEventTypes = new ArrayList<String>();
+    private HandlerRegistration previewRegistration;
+
+    private final Timer inactivityTimer = new Timer() {
+
+        @Override
+        public void run() {
+            onInactivityTimeout();
+        }
+    };
+
+    private final Timer hibernationTimer = new Timer() {
+
+        @Override
+        public void run() {
+            rpc.hibernationTimeout();
+            //this will trigger a request, but it's not a user initiated request
+            markNextRequestAsUserAction(false);
+        }
+    };
+
+    UserInactivityTracker(UserInactivityServerRpc rpc, ApplicationConnection connection) {
+        this.rpc = rpc;
+        handlerRegistrations.add(connection.addHandler(RequestStartingEvent.TYPE, this));
+        handlerRegistrations.add(connection.addHandler(ApplicationStoppedEvent.TYPE, this));
+    }
+
+    private void onInactivityTimeout() {
+        rpc.timeout();
+        //this will trigger a request, but it's not a user initiated request
+        markNextRequestAsUserAction(false);
+    }
+
+    private void markNextRequestAsUserAction(boolean mark) {
+        rpc.action(mark);
+        userInitiatedRequest = mark;
+    }
+
+    void schedule(int timeoutSeconds) {
+        schedule(inactivityTimer, timeoutSeconds);
+    }
+
+    void scheduleHibernation(int timeoutSeconds) {
+        schedule(hibernationTimer, timeoutSeconds);
+    }
+
+    private static void schedule(Timer timer, int timeoutSeconds) {
+        if (timeoutSeconds > 0) {
+            timer.schedule(timeoutSeconds * 1000);
+        } else {
+            timer.cancel();
+        }
+    }
+
+    void setActivityEventTypes(List<String> eventTypes) {
+        if (!isCaptureListenerSupported()) {
+            //fallback for browsers without addEventListener, like IE8
+            previewedEventTypes.clear();
+            previewedEventTypes.addAll(eventTypes);
+            if (previewRegistration == null) {
+                previewRegistration = Event.addNativePreviewHandler(new Event.NativePreviewHandler() {
+
+                    @Override
+                    public void onPreviewNativeEvent(Event.NativePreviewEvent event) {
+                        if (previewedEventTypes.contains(event.getNativeEvent().getType())) {
+                            onActivityEvent();
+                        }
+                    }
+                });
+            }
+            return;
+        }
+        for (String eventType : new ArrayList<String>(activityListeners.keySet())) {
+            if (!eventTypes.contains(eventType)) {
+                removeCaptureListener(eventType, activityListeners.remove(eventType));
+            }
+        }
+        for (String eventType : eventTypes) {
+            if (!activityListeners.containsKey(eventType)) {
+                activityListeners.put(eventType, addCaptureListener(eventType));
+            }
+        }
+    }
+
+    void stop() {
+        for (Map.Entry<String, JavaScriptObject> entry : activityListeners.entrySet()) {
+            removeCaptureListener(entry.getKey(), entry.getValue());
+        }
+        activityListeners.clear();
+        if (previewRegistration != null) {
+            previewRegistration.removeHandler();
+            previewRegistration = null;
+        }
+        for (HandlerRegistration handlerRegistration : handlerRegistrations) {
+            handlerRegistration.removeHandler();
+        }
+        handlerRegistrations.clear();
+        inactivityTimer.cancel();
+        hibernationTimer.cancel();
+    }
+
+    private void onActivityEvent() {
+        markNextRequestAsUserAction(true);
+    }
+
+    private static native boolean isCaptureListenerSupported() /*-{
+        return !!$doc.addEventListener;
+    }-*/;
+
+    private native JavaScriptObject addCaptureListener(String eventType) /*-{
+        var self = this;
+        var listener = $entry(function() {
+            self.@com.wcs.vaadin.userinactivity.client.UserInactivityTracker::onActivityEvent()();
+        });
+        // passive: the listener never calls preventDefault, so scrolling is not blocked
+        var passiveSupported = false;
+        try {
+            var probe = Object.defineProperty({}, 'passive', {
+                get: function() {
+                    passiveSupported = true;
+                }
+            });
+            $wnd.addEventListener('test', null, probe);
+            $wnd.removeEventListener('test', null, probe);
+        } catch (e) {
+        }
+        $doc.addEventListener(eventType, listener, passiveSupported ? {capture: true, passive: true} : true);
+        return listener;
+    }-*/;
+
+    private static native void removeCaptureListener(String eventType, JavaScriptObject listener) /*-{
+        $doc.removeEventListener(eventType, listener, true);
+    }-*/;
+
+    @Override
+    public void onRequestStarting(RequestStartingEvent e) {
+        if (userInitiatedRequest) {
+            inactivityTimer.cancel();
+            hibernationTimer.cancel();
+        }
+        userInitiatedRequest = false;
+    }
+
+    @Override
+    public void onApplicationStopped(ApplicationConnection.ApplicationStoppedEvent event) {
+        inactivityTimer.cancel();
+        hibernationTimer.cancel();
+    }
+
+    @Override
+    public void onResponseHandlingStarted(ApplicationConnection.ResponseHandlingStartedEvent e) {
+        //NO-OP
+    }
+
+    @Override
+    public void onResponseHandlingEnded(ApplicationConnection.ResponseHandlingEndedEvent e) {
+        //NO-OP
+    }
+
+}